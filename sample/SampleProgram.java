@@ -73,5 +73,26 @@ public class SampleProgram {
         // is clear. You may change this timeout by calling Log.setTimeout
         // with a custom TimeoutMode. By default, TimeoutMode includes a few
         // predefined options.
+        //
+        // The logfile, minimum level, batch size and timeout can all be
+        // changed while the program runs by passing a LogConfig to
+        // Log.configure, or by calling Log.watchConfig with a properties file
+        // which is reapplied whenever it changes, for example:
+        //
+        //   logpath=error.log
+        //   level=WARNING
+        //   batch=100
+        //   timeout=dynamic 5000 1000
+        //
+        // Several processes on the same host can share one log by calling
+        // Log.initializeShared with the path of a ring file, ideally on a
+        // memory backed filesystem such as /dev/shm. One process then runs a
+        // LogCollector which merges everything by timestamp into a single
+        // logfile, for example:
+        //
+        //   java -cp WhiteRabbit.jar me.aliceq.logging.LogCollector /dev/shm/app.ring app.log
+        //
+        // sample/shared-sample.sh runs several SharedSampleProgram publishers
+        // in separate JVMs against one collector and checks the merged output.
     }
 }
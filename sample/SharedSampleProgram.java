@@ -0,0 +1,69 @@
+package me.aliceq.irc.test;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Alice Quiros <email@aliceq.me>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import me.aliceq.logging.Log;
+import me.aliceq.logging.TimeoutMode;
+
+/**
+ * Sample publisher for shared logging. Run several of these in separate JVMs
+ * alongside a LogCollector to check that every message reaches the merged
+ * logfile, see shared-sample.sh.
+ *
+ * Usage: SharedSampleProgram channelpath name count
+ *
+ * @author Alice Quiros <email@aliceq.me>
+ */
+public class SharedSampleProgram {
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 3) {
+            System.err.println("Usage: SharedSampleProgram channelpath name count");
+            return;
+        }
+
+        String name = args[1];
+        int count = Integer.parseInt(args[2]);
+
+        // Publish to the shared ring instead of a logfile of our own
+        if (Log.initializeShared(TimeoutMode.constant(Log.DEFAULT_TIMEOUT / 10), args[0]) == null) {
+            System.err.println("Couldn't open shared log channel " + args[0]);
+            return;
+        }
+
+        // Each message carries the publisher name and a sequence number so
+        // the merged output can be checked for gaps
+        for (int i = 0; i < count; i++) {
+            Log.log("[" + name + "]", i);
+            if (i % 1000 == 0) {
+                Thread.sleep(1);
+            }
+        }
+
+        // Give the writer a last pass before quitting
+        Log.flush();
+        Log.quit();
+    }
+}
@@ -0,0 +1,51 @@
+#!/bin/sh
+#
+# Runs several SharedSampleProgram publishers in separate JVMs against one
+# LogCollector and checks that every message reached the merged logfile in
+# order. Run from the project root after building with ant.
+#
+# Usage: sample/shared-sample.sh [publishers] [messages]
+
+PUBLISHERS=${1:-4}
+MESSAGES=${2:-50000}
+WORK=$(mktemp -d)
+CHANNEL=/dev/shm/whiterabbit-sample-$$.ring
+[ -d /dev/shm ] || CHANNEL=$WORK/sample.ring
+
+javac -cp build/classes -d "$WORK" sample/SharedSampleProgram.java || exit 1
+CP=build/classes:$WORK
+
+# Create the ring before anyone publishes to it
+java -cp "$CP" me.aliceq.logging.LogCollector "$CHANNEL" "$WORK/merged.log" 2000 &
+COLLECTOR=$!
+sleep 1
+
+PIDS=
+i=0
+while [ $i -lt "$PUBLISHERS" ]; do
+    java -cp "$CP" me.aliceq.irc.test.SharedSampleProgram "$CHANNEL" "P$i" "$MESSAGES" &
+    PIDS="$PIDS $!"
+    i=$((i + 1))
+done
+wait $PIDS
+
+# Let the collector pass the grace period, then stop it so it writes the rest
+sleep 3
+kill "$COLLECTOR"
+wait "$COLLECTOR"
+
+STATUS=0
+i=0
+while [ $i -lt "$PUBLISHERS" ]; do
+    # Each publisher's sequence numbers must run 0..MESSAGES-1 without gaps
+    if ! grep -F "| [P$i] |" "$WORK/merged.log" | awk -F' [|] ' -v n="$MESSAGES" \
+            '$3 != NR - 1 { exit 1 } END { if (NR != n) exit 1 }'; then
+        echo "P$i: messages missing or out of order"
+        STATUS=1
+    fi
+    i=$((i + 1))
+done
+
+[ $STATUS -eq 0 ] && echo "OK: $PUBLISHERS x $MESSAGES messages merged into $WORK/merged.log"
+rm -f "$CHANNEL"
+exit $STATUS
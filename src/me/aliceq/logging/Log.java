@@ -23,9 +23,10 @@
  */
 package me.aliceq.logging;
 
+import java.io.IOException;
 import java.io.PrintStream;
-import java.util.ArrayDeque;
 import java.util.Date;
+import java.util.concurrent.ConcurrentLinkedDeque;
 
 /**
  * Main logging class which functions as a message queue
@@ -45,7 +46,7 @@ public class Log {
 
     private final LogWriter writer;
     private final Thread wrThread;
-    private final ArrayDeque<String> queue;
+    private final ConcurrentLinkedDeque<LogEntry> queue;
 
     /**
      *
@@ -53,8 +54,7 @@ public class Log {
      */
     public static Log getInstance() {
         if (singleton == null) {
-            singleton = new Log();
-            singleton.wrThread.start();
+            initialize();
         }
         return singleton;
     }
@@ -65,7 +65,8 @@ public class Log {
      *
      * Note that this makes the default logfile "output.log"
      *
-     * @return the created log instance or null if one already exists
+     * @return the created log instance or null if one already exists or the
+     * logfile couldn't be opened
      */
     public static Log initialize() {
         return initialize(TimeoutMode.dynamic(DEFAULT_TIMEOUT * 5, DEFAULT_TIMEOUT), LogWriter.DEFAULT_LOGFILE);
@@ -77,7 +78,8 @@ public class Log {
      * if possible should be initialized during setup for better control.
      *
      * @param logpath the path of the logfile to write
-     * @return the created log instance or null if one already exists
+     * @return the created log instance or null if one already exists or the
+     * logfile couldn't be opened
      */
     public static Log initialize(String logpath) {
         return initialize(TimeoutMode.dynamic(DEFAULT_TIMEOUT * 5, DEFAULT_TIMEOUT), logpath);
@@ -89,11 +91,72 @@ public class Log {
      *
      * @param mode the timeout mode for the writer thread
      * @param logpath the path of the logfile to write
-     * @return the created log instance or null if one already exists
+     * @return the created log instance or null if one already exists or the
+     * logfile couldn't be opened
      */
     public static Log initialize(TimeoutMode mode, String logpath) {
+        return initialize(LogConfig.defaults().withTimeout(mode).withLogpath(logpath));
+    }
+
+    /**
+     * Initializes the logging systems. This is normally done automatically but
+     * if possible should be initialized during setup for better control.
+     *
+     * @param config the configuration to start with
+     * @return the created log instance or null if one already exists or its
+     * output couldn't be opened
+     */
+    public static Log initialize(LogConfig config) {
+        if (singleton == null) {
+            try {
+                singleton = new Log(config);
+            } catch (IOException e) {
+                return null;
+            }
+            singleton.wrThread.start();
+            return singleton;
+        }
+        return null;
+    }
+
+    /**
+     * Initializes the logging systems to publish messages to a channel shared
+     * with other processes rather than writing a logfile. A LogCollector
+     * running in one process writes the merged output.
+     *
+     * Messages wait in this process while the channel is full. On quit,
+     * whatever the channel still can't take after about a second is written
+     * to stderr, so a collector should be running before this process exits.
+     *
+     * @param channelpath the path of the shared ring file
+     * @return the created log instance or null if one already exists or the
+     * channel couldn't be opened
+     */
+    public static Log initializeShared(String channelpath) {
+        return initializeShared(TimeoutMode.dynamic(DEFAULT_TIMEOUT * 5, DEFAULT_TIMEOUT), channelpath);
+    }
+
+    /**
+     * Initializes the logging systems to publish messages to a channel shared
+     * with other processes rather than writing a logfile. A LogCollector
+     * running in one process writes the merged output.
+     *
+     * Messages wait in this process while the channel is full. On quit,
+     * whatever the channel still can't take after about a second is written
+     * to stderr, so a collector should be running before this process exits.
+     *
+     * @param mode the timeout mode for the writer thread
+     * @param channelpath the path of the shared ring file
+     * @return the created log instance or null if one already exists or the
+     * channel couldn't be opened
+     */
+    public static Log initializeShared(TimeoutMode mode, String channelpath) {
         if (singleton == null) {
-            singleton = new Log(mode, logpath);
+            try {
+                singleton = new Log(mode, SharedLogChannel.open(channelpath));
+            } catch (IOException e) {
+                return null;
+            }
             singleton.wrThread.start();
             return singleton;
         }
@@ -109,6 +172,53 @@ public class Log {
         singleton.writer.setTimeout(mode);
     }
 
+    /**
+     * Switches the logging systems to a new configuration while the writer
+     * keeps running. Messages logged before the switch are written using the
+     * old configuration and messages logged after using the new one. In shared
+     * mode, messages that don't fit in a full channel are written using the
+     * new configuration instead.
+     *
+     * @param config the configuration to switch to
+     * @return true if the configuration was applied, false if its output
+     * couldn't be opened and the old configuration is still in use
+     */
+    public synchronized static boolean configure(LogConfig config) {
+        return singleton.writer.reconfigure(config);
+    }
+
+    /**
+     * Returns the configuration currently in use
+     *
+     * @return the current configuration
+     */
+    public static LogConfig getConfig() {
+        return singleton.writer.getConfig();
+    }
+
+    /**
+     * Applies the configuration in a properties file and reapplies it whenever
+     * the file changes. Keys missing from the file keep their current values,
+     * see LogConfig for the format of the file.
+     *
+     * @param path the path of the properties file
+     * @return the watcher for the file or null if it couldn't be watched
+     */
+    public static LogConfigWatcher watchConfig(String path) {
+        LogConfigWatcher watcher;
+        try {
+            watcher = new LogConfigWatcher(path);
+        } catch (IOException e) {
+            return null;
+        }
+        watcher.reload();
+
+        Thread thread = new Thread(watcher);
+        thread.setDaemon(true);
+        thread.start();
+        return watcher;
+    }
+
     /**
      * Pushes a message into the queue
      *
@@ -116,7 +226,7 @@ public class Log {
      * @param tag
      */
     public static void log(String tag, Object message) {
-        singleton.queue.push(new Date().toString() + " | " + tag + " | " + message.toString());
+        singleton.queue.push(entry(tag, message.toString()));
     }
 
     /**
@@ -125,7 +235,11 @@ public class Log {
      * @param info
      */
     public static void logInfo(Object info) {
-        singleton.queue.push(new Date().toString() + " | " + INFO_TAG + " | " + info.toString());
+        if (!LogLevel.INFO.passes(singleton.writer.getConfig().getLevel())) {
+            return;
+        }
+
+        singleton.queue.push(entry(INFO_TAG, info.toString()));
     }
 
     /**
@@ -134,7 +248,11 @@ public class Log {
      * @param warning
      */
     public static void logWarning(Object warning) {
-        singleton.queue.push(new Date().toString() + " | " + WARN_TAG + " | " + warning.toString());
+        if (!LogLevel.WARNING.passes(singleton.writer.getConfig().getLevel())) {
+            return;
+        }
+
+        singleton.queue.push(entry(WARN_TAG, warning.toString()));
     }
 
     /**
@@ -143,7 +261,11 @@ public class Log {
      * @param error
      */
     public static void logError(Object error) {
-        singleton.queue.push(new Date().toString() + " | " + ERROR_TAG + " | " + error.toString());
+        if (!LogLevel.ERROR.passes(singleton.writer.getConfig().getLevel())) {
+            return;
+        }
+
+        singleton.queue.push(entry(ERROR_TAG, error.toString()));
     }
 
     /**
@@ -152,7 +274,11 @@ public class Log {
      * @param e
      */
     public static void logException(Exception e) {
-        singleton.queue.push(new Date().toString() + " | " + EXCEPTION_TAG + " | " + e);
+        if (!LogLevel.EXCEPTION.passes(singleton.writer.getConfig().getLevel())) {
+            return;
+        }
+
+        singleton.queue.push(entry(EXCEPTION_TAG, e));
     }
     
     /**
@@ -161,12 +287,17 @@ public class Log {
      * @param e
      */
     public static void logExceptionVerbose(Exception e) {
-        String prefix = new Date().toString() + " | " + EXCEPTION_TAG + " | ";
+        if (!LogLevel.EXCEPTION.passes(singleton.writer.getConfig().getLevel())) {
+            return;
+        }
+
+        long time = System.currentTimeMillis();
+        String prefix = new Date(time).toString() + " | " + EXCEPTION_TAG + " | ";
         
-        singleton.queue.push(prefix + e);
+        singleton.queue.push(new LogEntry(time, prefix + e));
         
         for (StackTraceElement element : e.getStackTrace()){
-            singleton.queue.push(prefix + element.toString());  
+            singleton.queue.push(new LogEntry(time, prefix + element.toString()));  
         }
     }
     
@@ -174,7 +305,19 @@ public class Log {
      * Logs a blank line with no date-time or tag
      */
     public static void blankLine(){
-        singleton.queue.push("");
+        singleton.queue.push(new LogEntry(System.currentTimeMillis(), ""));
+    }
+
+    /**
+     * Creates a timestamped entry for the queue
+     *
+     * @param tag
+     * @param message
+     * @return the formatted entry
+     */
+    private static LogEntry entry(String tag, Object message) {
+        long time = System.currentTimeMillis();
+        return new LogEntry(time, new Date(time).toString() + " | " + tag + " | " + message);
     }
 
     /**
@@ -192,7 +335,8 @@ public class Log {
 
     /**
      * Marks the logging framework for exit. Warning, if this message is not
-     * called the most recent messages may not get logged.
+     * called the most recent messages may not get logged. In shared mode,
+     * messages the channel can't take are written to stderr.
      */
     public synchronized static void quit() {
         singleton.writer.exit();
@@ -209,18 +353,16 @@ public class Log {
         System.setOut(inter);
     }
 
-    /**
-     * Constructor
-     *
-     * Note; default timeout mode for writer is Dynamic
-     */
-    private Log() {
-        this(TimeoutMode.dynamic(DEFAULT_TIMEOUT * 5, DEFAULT_TIMEOUT), LogWriter.DEFAULT_LOGFILE);
+    private Log(TimeoutMode mode, SharedLogChannel channel) {
+        queue = new ConcurrentLinkedDeque<>();
+        writer = new LogWriter(mode, queue, channel);
+        wrThread = new Thread(writer);
+        wrThread.setDaemon(true);
     }
 
-    private Log(TimeoutMode mode, String logpath) {
-        queue = new ArrayDeque();
-        writer = new LogWriter(mode, queue, logpath);
+    private Log(LogConfig config) throws IOException {
+        queue = new ConcurrentLinkedDeque<>();
+        writer = new LogWriter(config, queue);
         wrThread = new Thread(writer);
         wrThread.setDaemon(true);
     }
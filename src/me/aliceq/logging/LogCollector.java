@@ -0,0 +1,198 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Alice Quiros <email@aliceq.me>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.aliceq.logging;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * Runnable which drains a SharedLogChannel filled by other processes, merges
+ * the entries by timestamp and hands them to a LogWriter.
+ *
+ * Processes only publish when their writer wakes up, so entries are held back
+ * for a short grace period before being written. This should be at least as
+ * long as the slowest writer timeout used by the publishing processes.
+ *
+ * @author Alice Quiros <email@aliceq.me>
+ */
+public final class LogCollector implements Runnable {
+
+    public static final int DEFAULT_INTERVAL = 100;
+    public static final int DEFAULT_LATENESS = Log.DEFAULT_TIMEOUT * 6;
+
+    private final SharedLogChannel channel;
+    private final LogWriter writer;
+    private final Thread wrThread;
+    private final ConcurrentLinkedDeque<LogEntry> queue;
+    private final PriorityQueue<Pending> pending;
+    private final ArrayList<LogEntry> drained;
+    private final int lateness;
+
+    private volatile boolean running;
+    private long sequence;
+
+    /**
+     * Constructor
+     *
+     * @param channel the channel to collect from
+     * @param logpath the path of the logfile to write
+     * @throws IOException if the logfile couldn't be opened
+     */
+    public LogCollector(SharedLogChannel channel, String logpath) throws IOException {
+        this(channel, TimeoutMode.dynamic(Log.DEFAULT_TIMEOUT * 5, Log.DEFAULT_TIMEOUT), logpath, DEFAULT_LATENESS);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param channel the channel to collect from
+     * @param mode the timeout mode for the writer thread
+     * @param logpath the path of the logfile to write
+     * @param lateness milliseconds to hold entries back for before writing
+     * @throws IOException if the logfile couldn't be opened
+     */
+    public LogCollector(SharedLogChannel channel, TimeoutMode mode, String logpath, int lateness) throws IOException {
+        this.channel = channel;
+        this.lateness = lateness;
+        this.running = true;
+        this.queue = new ConcurrentLinkedDeque<>();
+        this.drained = new ArrayList<>();
+        this.pending = new PriorityQueue<>(64, new Comparator<Pending>() {
+            @Override
+            public int compare(Pending a, Pending b) {
+                if (a.entry.getTime() != b.entry.getTime()) {
+                    return a.entry.getTime() < b.entry.getTime() ? -1 : 1;
+                }
+                return a.sequence < b.sequence ? -1 : (a.sequence == b.sequence ? 0 : 1);
+            }
+        });
+
+        writer = new LogWriter(mode, queue, logpath);
+        wrThread = new Thread(writer);
+        wrThread.setDaemon(true);
+    }
+
+    /**
+     * Moves entries from the channel into the pending set and passes on the
+     * ones older than the watermark
+     *
+     * @param watermark entries at or before this time are written
+     */
+    private void collect(long watermark) {
+        try {
+            channel.drain(drained);
+        } catch (IOException e) {
+        }
+
+        for (LogEntry entry : drained) {
+            pending.add(new Pending(entry, sequence++));
+        }
+        drained.clear();
+
+        while (!pending.isEmpty() && pending.peek().entry.getTime() <= watermark) {
+            queue.push(pending.poll().entry);
+        }
+    }
+
+    @Override
+    public void run() {
+        wrThread.start();
+
+        try {
+            while (running) {
+                collect(System.currentTimeMillis() - lateness);
+
+                try {
+                    Thread.sleep(DEFAULT_INTERVAL);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        } finally {
+            // Everything still pending gets written
+            collect(Long.MAX_VALUE);
+            writer.exit();
+            channel.close();
+        }
+    }
+
+    /**
+     * Marks the collector for exit. Anything left in the channel is written
+     * before the collector returns.
+     */
+    public void quit() {
+        running = false;
+    }
+
+    /**
+     * Runs a collector until the process is terminated
+     *
+     * Usage: LogCollector channelpath logpath [lateness]
+     *
+     * @param args command line arguments
+     * @throws IOException if the channel or logfile could not be opened
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: LogCollector channelpath logpath [lateness]");
+            return;
+        }
+
+        int lateness = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_LATENESS;
+        final LogCollector collector = new LogCollector(SharedLogChannel.open(args[0]),
+                TimeoutMode.dynamic(Log.DEFAULT_TIMEOUT * 5, Log.DEFAULT_TIMEOUT), args[1], lateness);
+        final Thread main = Thread.currentThread();
+
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                collector.quit();
+                try {
+                    main.join();
+                } catch (InterruptedException e) {
+                }
+            }
+        });
+
+        collector.run();
+    }
+
+    /**
+     * Entry tagged with the order it was drained in so that entries sharing a
+     * timestamp keep their original order
+     */
+    private static final class Pending {
+
+        private final LogEntry entry;
+        private final long sequence;
+
+        private Pending(LogEntry entry, long sequence) {
+            this.entry = entry;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Alice Quiros <email@aliceq.me>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.aliceq.logging;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Immutable set of options for the logging framework. Each with- method
+ * returns a modified copy so a whole configuration can be swapped in at once.
+ *
+ * Configurations can also be read from a properties file with the keys
+ * logpath, channel, level, batch and timeout. The timeout is the name of a
+ * TimeoutMode factory followed by its arguments, eg. "dynamic 5000 1000".
+ * Keys missing from the file keep the value of a base configuration, and an
+ * empty channel switches from the shared channel back to the logfile.
+ *
+ * @author Alice Quiros <email@aliceq.me>
+ */
+public final class LogConfig {
+
+    public static final String LOGPATH_KEY = "logpath";
+    public static final String CHANNEL_KEY = "channel";
+    public static final String LEVEL_KEY = "level";
+    public static final String BATCH_KEY = "batch";
+    public static final String TIMEOUT_KEY = "timeout";
+
+    private static final LogConfig DEFAULTS = new LogConfig(
+            TimeoutMode.dynamic(Log.DEFAULT_TIMEOUT * 5, Log.DEFAULT_TIMEOUT),
+            LogLevel.INFO, LogWriter.DEFAULT_LOGFILE, null, 0);
+
+    private final TimeoutMode timeout;
+    private final LogLevel level;
+    private final String logpath;
+    private final String channelpath;
+    private final int batch;
+
+    private LogConfig(TimeoutMode timeout, LogLevel level, String logpath, String channelpath, int batch) {
+        this.timeout = timeout;
+        this.level = level;
+        this.logpath = logpath;
+        this.channelpath = channelpath;
+        this.batch = batch;
+    }
+
+    /**
+     * Returns the default configuration, which writes every level to
+     * "output.log" using a dynamic timeout
+     *
+     * @return the default configuration
+     */
+    public static LogConfig defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Reads a configuration from a properties file. Missing keys take their
+     * default values.
+     *
+     * @param path the path of the properties file
+     * @return the configuration described by the file
+     * @throws IOException if the file couldn't be read
+     * @throws IllegalArgumentException if a value couldn't be parsed
+     */
+    public static LogConfig load(String path) throws IOException {
+        return load(path, DEFAULTS);
+    }
+
+    /**
+     * Reads a configuration from a properties file. Missing keys keep the
+     * value they have in base.
+     *
+     * @param path the path of the properties file
+     * @param base the configuration to take missing values from
+     * @return the configuration described by the file
+     * @throws IOException if the file couldn't be read
+     * @throws IllegalArgumentException if a value couldn't be parsed
+     */
+    public static LogConfig load(String path, LogConfig base) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(path)) {
+            properties.load(in);
+        }
+        return load(properties, base);
+    }
+
+    /**
+     * Reads a configuration from a set of properties. Missing keys take their
+     * default values.
+     *
+     * @param properties the properties to read
+     * @return the configuration described by the properties
+     * @throws IllegalArgumentException if a value couldn't be parsed
+     */
+    public static LogConfig load(Properties properties) {
+        return load(properties, DEFAULTS);
+    }
+
+    /**
+     * Reads a configuration from a set of properties. Missing keys keep the
+     * value they have in base.
+     *
+     * @param properties the properties to read
+     * @param base the configuration to take missing values from
+     * @return the configuration described by the properties
+     * @throws IllegalArgumentException if a value couldn't be parsed
+     */
+    public static LogConfig load(Properties properties, LogConfig base) {
+        LogConfig config = base;
+
+        String value = properties.getProperty(LOGPATH_KEY);
+        if (value != null && !value.trim().isEmpty()) {
+            config = config.withLogpath(value.trim());
+        }
+
+        // An empty channel goes back to writing the logfile
+        value = properties.getProperty(CHANNEL_KEY);
+        if (value != null) {
+            config = config.withChannelpath(value.trim().isEmpty() ? null : value.trim());
+        }
+
+        value = properties.getProperty(LEVEL_KEY);
+        if (value != null && !value.trim().isEmpty()) {
+            config = config.withLevel(LogLevel.valueOf(value.trim().toUpperCase()));
+        }
+
+        value = properties.getProperty(BATCH_KEY);
+        if (value != null && !value.trim().isEmpty()) {
+            config = config.withBatch(Integer.parseInt(value.trim()));
+        }
+
+        value = properties.getProperty(TIMEOUT_KEY);
+        if (value != null && !value.trim().isEmpty()) {
+            config = config.withTimeout(parseTimeout(value.trim()));
+        }
+
+        return config;
+    }
+
+    /**
+     * Parses a TimeoutMode factory call written as its name followed by its
+     * arguments
+     */
+    private static TimeoutMode parseTimeout(String value) {
+        String[] parts = value.split("\\s+");
+        int[] args = new int[parts.length - 1];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = Integer.parseInt(parts[i + 1]);
+        }
+
+        switch (parts[0] + "/" + args.length) {
+            case "constant/1":
+                return TimeoutMode.constant(args[0]);
+            case "dynamic/2":
+                return TimeoutMode.dynamic(args[0], args[1]);
+            case "dynamic/3":
+                return TimeoutMode.dynamic(args[0], args[1], args[2]);
+            case "dynamic2/5":
+                return TimeoutMode.dynamic2(args[0], args[1], args[2], args[3], args[4]);
+            case "linear/3":
+                return TimeoutMode.linear(args[0], args[1], args[2]);
+            default:
+                throw new IllegalArgumentException("Unknown timeout: " + value);
+        }
+    }
+
+    /**
+     *
+     * @param timeout the timeout mode for the writer thread
+     * @return a copy of this configuration using the given timeout
+     */
+    public LogConfig withTimeout(TimeoutMode timeout) {
+        return new LogConfig(timeout, level, logpath, channelpath, batch);
+    }
+
+    /**
+     *
+     * @param level the least severe level to log
+     * @return a copy of this configuration using the given level
+     */
+    public LogConfig withLevel(LogLevel level) {
+        return new LogConfig(timeout, level, logpath, channelpath, batch);
+    }
+
+    /**
+     *
+     * @param logpath the path of the logfile to write
+     * @return a copy of this configuration using the given logfile
+     */
+    public LogConfig withLogpath(String logpath) {
+        return new LogConfig(timeout, level, logpath, channelpath, batch);
+    }
+
+    /**
+     *
+     * @param channelpath the path of a shared ring file to publish to instead
+     * of the logfile, or null to write the logfile
+     * @return a copy of this configuration using the given channel
+     */
+    public LogConfig withChannelpath(String channelpath) {
+        return new LogConfig(timeout, level, logpath, channelpath, batch);
+    }
+
+    /**
+     * The writer still clears the whole queue on every iteration, the batch
+     * size only sets how many messages are written between flushes.
+     *
+     * @param batch the most messages to write between flushes, or 0 to flush
+     * once per writer iteration
+     * @return a copy of this configuration using the given batch size
+     */
+    public LogConfig withBatch(int batch) {
+        if (batch < 0) {
+            throw new IllegalArgumentException("Negative batch size: " + batch);
+        }
+        return new LogConfig(timeout, level, logpath, channelpath, batch);
+    }
+
+    public TimeoutMode getTimeout() {
+        return timeout;
+    }
+
+    public LogLevel getLevel() {
+        return level;
+    }
+
+    public String getLogpath() {
+        return logpath;
+    }
+
+    public String getChannelpath() {
+        return channelpath;
+    }
+
+    public int getBatch() {
+        return batch;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Alice Quiros <email@aliceq.me>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.aliceq.logging;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Properties;
+
+/**
+ * Runnable which watches a properties file and applies it to the logging
+ * framework whenever it changes. Keys missing from the file keep their
+ * current values. Problems reading the file are logged with the warning tag
+ * regardless of the configured level, and leave the current configuration in
+ * place.
+ *
+ * @author Alice Quiros <email@aliceq.me>
+ */
+public final class LogConfigWatcher implements Runnable {
+
+    // Editors often write a file in several steps, wait for them to finish
+    private static final int SETTLE_DELAY = 100;
+
+    private final Path path;
+    private final WatchService service;
+
+    private Properties current;
+    private LogConfig applied;
+
+    /**
+     * Constructor
+     *
+     * @param path the path of the properties file to watch
+     * @throws IOException if the directory of the file couldn't be watched
+     */
+    public LogConfigWatcher(String path) throws IOException {
+        this.path = Paths.get(path).toAbsolutePath();
+        service = this.path.getFileSystem().newWatchService();
+        this.path.getParent().register(service,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+
+    /**
+     * Reads the file and applies it if it differs from the last configuration
+     * applied
+     *
+     * @return true if the file's configuration is in use
+     */
+    public synchronized boolean reload() {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(path)) {
+            properties.load(in);
+        } catch (IOException e) {
+            Log.log(Log.WARN_TAG, "Couldn't read log configuration " + path + ": " + e);
+            return false;
+        }
+
+        // Skip only if nothing has replaced what this file last applied
+        if (properties.equals(current) && Log.getConfig() == applied) {
+            return true;
+        }
+
+        LogConfig config;
+        try {
+            config = LogConfig.load(properties, Log.getConfig());
+        } catch (IllegalArgumentException e) {
+            Log.log(Log.WARN_TAG, "Invalid log configuration " + path + ": " + e.getMessage());
+            return false;
+        }
+
+        if (!Log.configure(config)) {
+            Log.log(Log.WARN_TAG, "Couldn't open output for log configuration " + path);
+            return false;
+        }
+
+        current = properties;
+        applied = config;
+        return true;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                Thread.sleep(SETTLE_DELAY);
+
+                // Gather everything that happened while settling
+                boolean changed = false;
+                while (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                                || path.getFileName().equals(event.context())) {
+                            changed = true;
+                        }
+                    }
+                    if (!key.reset()) {
+                        return;
+                    }
+                    key = service.poll();
+                }
+
+                if (changed) {
+                    reload();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Stop watching
+        }
+    }
+
+    /**
+     * Stops watching the file
+     */
+    public void quit() {
+        try {
+            service.close();
+        } catch (IOException e) {
+        }
+    }
+}
@@ -28,10 +28,15 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedDeque;
 
 /**
  * Runnable which writes to a log file from a queue on a separate thread before
- * delaying for a short duration
+ * delaying for a short duration. When given a SharedLogChannel the queue is
+ * published to the channel instead and a LogCollector writes the file.
+ *
+ * The output, timeout and batch size come from a LogConfig which can be
+ * replaced while the writer is running.
  *
  * @author Alice Quiros <email@aliceq.me>
  */
@@ -39,26 +44,102 @@ public final class LogWriter implements Runnable {
 
     public static final String DEFAULT_LOGFILE = "output.log";
 
-    private final ArrayDeque<String> queue;
+    private static final int EXIT_RETRIES = 10;
+    private static final int EXIT_RETRY_DELAY = 100;
+
+    private final ConcurrentLinkedDeque<LogEntry> queue;
+    private final ArrayDeque<String> legacy;
 
     private OutputStreamWriter writer;
-    private TimeoutMode timeout;
+    private SharedLogChannel channel;
+    private volatile LogConfig config;
     private boolean idle;
+    private boolean closed;
 
     /**
      *
      * @param timeout milliseconds to wait between iterations
-     * @param queue reference to a queue to monitor
+     * @param queue reference to a queue of messages to monitor
+     * @deprecated use a queue of LogEntry, messages from this queue are
+     * timestamped when the writer picks them up
      */
+    @Deprecated
     public LogWriter(TimeoutMode timeout, ArrayDeque<String> queue) {
         this(timeout, queue, DEFAULT_LOGFILE);
     }
 
+    /**
+     *
+     * @param timeout milliseconds to wait between iterations
+     * @param queue reference to a queue of messages to monitor
+     * @param logpath the path of the logfile to write
+     * @deprecated use a queue of LogEntry, messages from this queue are
+     * timestamped when the writer picks them up
+     */
+    @Deprecated
     public LogWriter(TimeoutMode timeout, ArrayDeque<String> queue, String logpath) {
-        this.timeout = timeout;
+        this.config = LogConfig.defaults().withTimeout(timeout).withLogpath(logpath);
+        this.queue = new ConcurrentLinkedDeque<>();
+        this.legacy = queue;
+        this.idle = true;
+        try {
+            writer = openLogFile(logpath);
+        } catch (IOException e) {
+            System.err.println("Couldn't open logfile " + logpath + ": " + e);
+        }
+    }
+
+    /**
+     *
+     * @param timeout milliseconds to wait between iterations
+     * @param queue reference to a queue to monitor
+     * @throws IOException if the logfile couldn't be opened
+     */
+    public LogWriter(TimeoutMode timeout, ConcurrentLinkedDeque<LogEntry> queue) throws IOException {
+        this(timeout, queue, DEFAULT_LOGFILE);
+    }
+
+    /**
+     *
+     * @param timeout milliseconds to wait between iterations
+     * @param queue reference to a queue to monitor
+     * @param logpath the path of the logfile to write
+     * @throws IOException if the logfile couldn't be opened
+     */
+    public LogWriter(TimeoutMode timeout, ConcurrentLinkedDeque<LogEntry> queue, String logpath) throws IOException {
+        this(LogConfig.defaults().withTimeout(timeout).withLogpath(logpath), queue);
+    }
+
+    /**
+     *
+     * @param timeout milliseconds to wait between iterations
+     * @param queue reference to a queue to monitor
+     * @param channel shared channel to publish to instead of a file
+     */
+    public LogWriter(TimeoutMode timeout, ConcurrentLinkedDeque<LogEntry> queue, SharedLogChannel channel) {
+        this.config = LogConfig.defaults().withTimeout(timeout).withChannelpath(channel.getPath());
+        this.queue = queue;
+        this.legacy = null;
+        this.channel = channel;
+        this.idle = true;
+    }
+
+    /**
+     *
+     * @param config the configuration to start with
+     * @param queue reference to a queue to monitor
+     * @throws IOException if the configured output couldn't be opened
+     */
+    public LogWriter(LogConfig config, ConcurrentLinkedDeque<LogEntry> queue) throws IOException {
+        if (config.getChannelpath() != null) {
+            channel = SharedLogChannel.open(config.getChannelpath());
+        } else {
+            writer = openLogFile(config.getLogpath());
+        }
+        this.config = config;
         this.queue = queue;
+        this.legacy = null;
         this.idle = true;
-        initLogWriter(logpath);
     }
 
     /**
@@ -66,48 +147,163 @@ public final class LogWriter implements Runnable {
      *
      * @param mode Timeout mode instance
      */
-    public void setTimeout(TimeoutMode mode) {
-        this.timeout = mode;
+    public synchronized void setTimeout(TimeoutMode mode) {
+        config = config.withTimeout(mode);
+        notify();
     }
 
-    public synchronized boolean initLogWriter(String logpath) {
-        // Correct path separators
-        String filepath = logpath.replace('\\', File.separatorChar).replace('/', File.separatorChar);
+    /**
+     * Returns the configuration currently in use
+     *
+     * @return the current configuration
+     */
+    public LogConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Switches to a new configuration without stopping the writer. Everything
+     * queued before the switch goes to the old output and everything after to
+     * the new one, except in shared mode where entries that don't fit in a
+     * full channel stay queued and go to the new output. No entries are lost
+     * and their order is kept. If the new output can't be opened the old
+     * configuration is kept.
+     *
+     * @param next the configuration to switch to
+     * @return true if the configuration was applied
+     */
+    public synchronized boolean reconfigure(LogConfig next) {
+        if (closed) {
+            return false;
+        }
 
+        // Open the new output before touching the old one
+        OutputStreamWriter nextWriter = null;
+        SharedLogChannel nextChannel = null;
         try {
-            // Create a new file
-            File f = new File(filepath);
-            if (f.isFile()) {
-                f.createNewFile();
+            if (next.getChannelpath() != null) {
+                nextChannel = SharedLogChannel.open(next.getChannelpath());
+            } else {
+                nextWriter = openLogFile(next.getLogpath());
             }
-
-            FileOutputStream fos = new FileOutputStream(f, true);
-            writer = new OutputStreamWriter(fos);
         } catch (IOException e) {
             return false;
         }
+
+        // Whatever is queued belongs to the old output, ignoring the batch
+        // size. A full channel leaves the rest queued for the new output.
+        writeQueue(0);
+        closeOutput();
+
+        writer = nextWriter;
+        channel = nextChannel;
+        config = next;
+
+        // Wake up so the new timeout takes effect
+        notify();
         return true;
     }
 
+    public synchronized boolean initLogWriter(String logpath) {
+        return reconfigure(config.withLogpath(logpath).withChannelpath(null));
+    }
+
+    private static OutputStreamWriter openLogFile(String logpath) throws IOException {
+        // Correct path separators
+        String filepath = logpath.replace('\\', File.separatorChar).replace('/', File.separatorChar);
+
+        // Create a new file
+        File f = new File(filepath);
+        if (f.isFile()) {
+            f.createNewFile();
+        }
+
+        FileOutputStream fos = new FileOutputStream(f, true);
+        return new OutputStreamWriter(fos);
+    }
+
     /**
-     * Writes the contents of the queue to a file then flushes the file
+     * Writes the contents of the queue to a file, flushing after every batch.
+     * In shared mode anything that doesn't fit in the channel stays queued for
+     * the next pass.
      *
-     * @return The number of items cleared
+     * @return The number of items queued at the start of the pass
      */
     private synchronized int clearQueue() {
+        takeLegacy();
         int n = queue.size();
+        int batch = config.getBatch();
+
+        // Keep writing batches until everything queued at the start is out
+        int total = 0;
+        int written;
+        do {
+            written = writeQueue(batch);
+            total += written;
+        } while (batch > 0 && written == batch && total < n);
+
+        return n;
+    }
+
+    /**
+     * Moves messages from a deprecated string queue onto the entry queue
+     */
+    private void takeLegacy() {
+        if (legacy != null) {
+            long time = System.currentTimeMillis();
+            String text;
+            while ((text = legacy.pollLast()) != null) {
+                queue.push(new LogEntry(time, text));
+            }
+        }
+    }
 
+    /**
+     * Writes up to limit entries from the queue to the current output then
+     * flushes it
+     *
+     * @param limit the most entries to write, or 0 for no limit
+     * @return The number of items written
+     */
+    private int writeQueue(int limit) {
+        takeLegacy();
+
+        int n = 0;
         try {
-            while (!queue.isEmpty()) {
-                writer.write(queue.pollLast() + '\n');
+            if (channel != null) {
+                n = channel.publish(queue, limit);
+            } else if (writer != null) {
+                LogEntry entry;
+                while ((limit == 0 || n < limit) && (entry = queue.pollLast()) != null) {
+                    writer.write(entry.getText() + '\n');
+                    n++;
+                }
+                writer.flush();
             }
-            writer.flush();
         } catch (IOException e) {
         }
 
         return n;
     }
 
+    /**
+     * Closes the current output
+     */
+    private void closeOutput() {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+            }
+            writer = null;
+        }
+    }
+
     @Override
     public void run() {
         try {
@@ -120,7 +316,7 @@ public final class LogWriter implements Runnable {
 
                     synchronized (this) {
                         idle = true;
-                        wait(timeout.getTimeout(n));
+                        wait(config.getTimeout().getTimeout(n));
                         idle = false;
                     }
                 } catch (Exception e) {
@@ -144,16 +340,44 @@ public final class LogWriter implements Runnable {
     }
 
     /**
-     * Force the writer to dump its queue and exit
+     * Force the writer to dump its queue and exit. In shared mode anything
+     * that still doesn't fit in the channel after a short wait is written to
+     * stderr instead.
      */
-    public void exit() {
+    public synchronized void exit() {
+        if (closed) {
+            return;
+        }
+
+        // Refuse reconfiguration from here on, the retries below release the
+        // monitor while waiting
+        closed = true;
+
         // write everything that's left
-        clearQueue();
+        writeQueue(0);
 
-        // Close output stream
-        try {
-            writer.close();
-        } catch (IOException e) {
+        if (channel != null) {
+            // Give the collector a chance to make room
+            for (int i = 0; i < EXIT_RETRIES && !queue.isEmpty(); i++) {
+                try {
+                    wait(EXIT_RETRY_DELAY);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                writeQueue(0);
+            }
+
+            // No collector made room, keep the rest rather than dropping it
+            if (!queue.isEmpty()) {
+                System.err.println("Shared log channel " + channel.getPath()
+                        + " is full, writing " + queue.size() + " remaining messages to stderr");
+                LogEntry entry;
+                while ((entry = queue.pollLast()) != null) {
+                    System.err.println(entry.getText());
+                }
+            }
         }
+
+        closeOutput();
     }
 }
@@ -0,0 +1,327 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Alice Quiros <email@aliceq.me>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.aliceq.logging;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * Ring buffer backed by a memory-mapped file which lets several processes on
+ * the same host publish log entries to a single collector.
+ *
+ * Access is serialized between processes with a lock on the file header and
+ * within a process by synchronizing on the channel, so only one instance is
+ * ever opened per file per process. Placing the file on a memory backed
+ * filesystem such as /dev/shm keeps it off the disk entirely.
+ *
+ * @author Alice Quiros <email@aliceq.me>
+ */
+public final class SharedLogChannel implements Closeable {
+
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    private static final int MAGIC = 0x57524C47;
+    private static final int HEADER_SIZE = 64;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CAPACITY_OFFSET = 4;
+    private static final int HEAD_OFFSET = 8;
+    private static final int TAIL_OFFSET = 16;
+
+    // Each record is an int length and a long timestamp followed by the text
+    private static final int RECORD_HEADER = 12;
+    private static final int PADDING = -1;
+
+    private static final Map<String, SharedLogChannel> channels = new HashMap<>();
+
+    private final String path;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private int references;
+
+    /**
+     * Opens a channel with the default capacity, or the capacity it was
+     * created with if the file is already in use
+     *
+     * @param path the path of the shared ring file
+     * @return the channel for this path
+     * @throws IOException if the file could not be opened or mapped
+     */
+    public static SharedLogChannel open(String path) throws IOException {
+        return open(path, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Opens a channel. If the file was already created by another process its
+     * existing capacity is used instead.
+     *
+     * @param path the path of the shared ring file
+     * @param capacity size of the ring in bytes
+     * @return the channel for this path
+     * @throws IOException if the file could not be opened or mapped
+     */
+    public static SharedLogChannel open(String path, int capacity) throws IOException {
+        String key = new File(path).getCanonicalPath();
+
+        synchronized (channels) {
+            SharedLogChannel c = channels.get(key);
+            if (c == null) {
+                c = new SharedLogChannel(key, capacity);
+                channels.put(key, c);
+            }
+            c.references++;
+            return c;
+        }
+    }
+
+    private SharedLogChannel(String path, int capacity) throws IOException {
+        if (capacity < RECORD_HEADER * 2) {
+            throw new IllegalArgumentException("Capacity too small: " + capacity);
+        }
+
+        this.path = path;
+        file = new RandomAccessFile(path, "rw");
+        channel = file.getChannel();
+
+        try {
+            FileLock lock = channel.lock(0, HEADER_SIZE, false);
+            try {
+                if (channel.size() >= HEADER_SIZE) {
+                    ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+                    if (header.getInt(MAGIC_OFFSET) == MAGIC) {
+                        capacity = header.getInt(CAPACITY_OFFSET);
+                    }
+                }
+
+                this.capacity = capacity;
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + capacity);
+
+                // First one in sets up the header
+                if (buffer.getInt(MAGIC_OFFSET) != MAGIC) {
+                    buffer.putInt(CAPACITY_OFFSET, capacity);
+                    buffer.putLong(HEAD_OFFSET, 0);
+                    buffer.putLong(TAIL_OFFSET, 0);
+                    buffer.putInt(MAGIC_OFFSET, MAGIC);
+                }
+            } finally {
+                lock.release();
+            }
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the size of the ring
+     *
+     * @return the size of the ring in bytes
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the canonical path of the shared ring file
+     *
+     * @return the path of the shared ring file
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Moves as many entries as will fit from the tail of the queue into the
+     * ring. Entries which don't fit are left in the queue. Only one thread
+     * may take from the queue at a time. Messages longer than half the ring
+     * are truncated.
+     *
+     * @param queue the queue to take entries from
+     * @return the number of entries published
+     * @throws IOException if the channel could not be locked
+     */
+    public int publish(ConcurrentLinkedDeque<LogEntry> queue) throws IOException {
+        return publish(queue, 0);
+    }
+
+    /**
+     * Moves up to limit entries from the tail of the queue into the ring.
+     * Entries which don't fit are left in the queue. Only one thread may take
+     * from the queue at a time.
+     *
+     * @param queue the queue to take entries from
+     * @param limit the most entries to publish, or 0 for no limit
+     * @return the number of entries published
+     * @throws IOException if the channel could not be locked
+     */
+    public synchronized int publish(ConcurrentLinkedDeque<LogEntry> queue, int limit) throws IOException {
+        if (queue.isEmpty()) {
+            return 0;
+        }
+
+        int n = 0;
+        FileLock lock = channel.lock(0, HEADER_SIZE, false);
+        try {
+            long head = buffer.getLong(HEAD_OFFSET);
+            long tail = buffer.getLong(TAIL_OFFSET);
+
+            LogEntry entry;
+            while ((limit == 0 || n < limit) && (entry = queue.peekLast()) != null) {
+                byte[] text = encode(entry.getText());
+                int size = RECORD_HEADER + text.length;
+
+                // Records never wrap, skip to the start if there isn't room
+                int offset = (int) (tail % capacity);
+                int remaining = capacity - offset;
+                int skip = size > remaining ? remaining : 0;
+
+                if (tail + skip + size - head > capacity) {
+                    break;
+                }
+
+                if (skip > 0) {
+                    if (remaining >= RECORD_HEADER) {
+                        buffer.putInt(HEADER_SIZE + offset, PADDING);
+                    }
+                    tail += skip;
+                    offset = 0;
+                }
+
+                int position = HEADER_SIZE + offset;
+                buffer.putInt(position, text.length);
+                buffer.putLong(position + 4, entry.getTime());
+                ByteBuffer record = buffer.duplicate();
+                record.position(position + RECORD_HEADER);
+                record.put(text);
+
+                tail += size;
+                queue.pollLast();
+                n++;
+            }
+
+            buffer.putLong(TAIL_OFFSET, tail);
+        } finally {
+            lock.release();
+        }
+        return n;
+    }
+
+    /**
+     * Removes every entry currently in the ring, in the order they were
+     * published
+     *
+     * @param out collection to add the entries to
+     * @return the number of entries drained
+     * @throws IOException if the channel could not be locked
+     */
+    public synchronized int drain(Collection<LogEntry> out) throws IOException {
+        int n = 0;
+        FileLock lock = channel.lock(0, HEADER_SIZE, false);
+        try {
+            long head = buffer.getLong(HEAD_OFFSET);
+            long tail = buffer.getLong(TAIL_OFFSET);
+
+            while (head < tail) {
+                int offset = (int) (head % capacity);
+                int remaining = capacity - offset;
+                int position = HEADER_SIZE + offset;
+
+                int length = remaining < RECORD_HEADER ? PADDING : buffer.getInt(position);
+                if (length == PADDING) {
+                    head += remaining;
+                    continue;
+                }
+
+                long time = buffer.getLong(position + 4);
+                byte[] text = new byte[length];
+                ByteBuffer record = buffer.duplicate();
+                record.position(position + RECORD_HEADER);
+                record.get(text);
+
+                out.add(new LogEntry(time, new String(text, StandardCharsets.UTF_8)));
+                head += RECORD_HEADER + length;
+                n++;
+            }
+
+            buffer.putLong(HEAD_OFFSET, head);
+        } finally {
+            lock.release();
+        }
+        return n;
+    }
+
+    /**
+     * Encodes a message. Messages longer than half the ring are silently
+     * truncated so that a single record always fits once the ring has been
+     * drained, cutting before any character that would be split.
+     */
+    private byte[] encode(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        int max = capacity / 2 - RECORD_HEADER;
+        if (bytes.length <= max) {
+            return bytes;
+        }
+
+        // Back off while the cut would land on a UTF-8 continuation byte
+        while (max > 0 && (bytes[max] & 0xC0) == 0x80) {
+            max--;
+        }
+        return Arrays.copyOf(bytes, max);
+    }
+
+    /**
+     * Releases this reference to the channel. The file is closed once every
+     * reference in this process has been released, its contents are kept for
+     * the other processes.
+     */
+    @Override
+    public void close() {
+        synchronized (channels) {
+            if (references == 0 || --references > 0) {
+                return;
+            }
+            channels.remove(path);
+        }
+
+        synchronized (this) {
+            try {
+                file.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+}